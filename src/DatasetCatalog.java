@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps preprocessed datasets in memory between mining jobs.
+ * A dataset is registered once by name, and loaded lazily the first time it is mined for a given k.
+ * Each registered dataset has a memory budget, when a new k-variant does not fit, the least recently used
+ * variants of the same dataset are dropped.
+ */
+public class DatasetCatalog {
+
+    // a registered dataset and its loaded k-variants
+    private static class Entry {
+        final String path; //path of the database file in SPMF format
+        final long budget; //max estimated bytes for all loaded variants of this dataset
+        final Path outOfCore; //directory for memory-mapped databases (null: on-heap)
+        final ItemOrdering ordering; //order of the item names
+        //loaded (or loading) datasets by k, in access order (for LRU eviction)
+        final LinkedHashMap<Integer, CompletableFuture<TKU_PSO.Dataset>> variants =
+                new LinkedHashMap<>(4, 0.75f, true);
+        //k-variants that did not fit in the budget, rejected without loading until the dataset is registered again
+        final Map<Integer, String> rejected = new HashMap<>();
+
+        Entry(String path, long budget, Path outOfCore, ItemOrdering ordering) {
+            this.path = path;
+            this.budget = budget;
+            this.outOfCore = outOfCore;
+            this.ordering = ordering;
+        }
+    }
+
+    /**
+     * Thrown when a dataset does not fit in its memory budget
+     */
+    public static class BudgetExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public BudgetExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a dataset. Re-registering a name drops all loaded variants of the previous registration
+     *
+     * @param name   name used by mining jobs to refer to the dataset
+     * @param path   path to the database file in SPMF format
+     * @param budget max estimated heap bytes for the loaded variants of the dataset
+     */
+    public void register(String name, String path, long budget) {
+        register(name, path, budget, null, ItemOrdering.UTILITY_DESC);
+    }
+
+    /**
+     * Registers a dataset. Re-registering a name drops all loaded variants of the previous registration
+     *
+     * @param name      name used by mining jobs to refer to the dataset
+     * @param path      path to the database file in SPMF format
+     * @param budget    max estimated heap bytes for the loaded variants of the dataset
+     * @param outOfCore directory for memory-mapped transactions, only the tidSets and item info count against the
+     *                  budget. null to keep the transactions on-heap
+     * @param ordering  order in which items are renamed, AUTO is resolved once per loaded variant
+     */
+    public void register(String name, String path, long budget, Path outOfCore, ItemOrdering ordering) {
+        entries.put(name, new Entry(path, budget, outOfCore, ordering));
+    }
+
+    /**
+     * Removes a dataset and all its loaded variants
+     *
+     * @return true if the dataset was registered
+     */
+    public boolean remove(String name) {
+        return entries.remove(name) != null;
+    }
+
+    /**
+     * Returns a dataset preprocessed for k, loading it if it is not in memory.
+     * A loaded variant for a larger k is reused, since it contains all HTWUIs of k.
+     * Concurrent requests for the same variant wait for a single load.
+     *
+     * @param name the registered name
+     * @param k    the number of top-k HUIs the dataset is mined for
+     * @return the preprocessed dataset
+     * @throws IllegalArgumentException if no dataset is registered with the name
+     * @throws BudgetExceededException  if the dataset is larger than its budget
+     */
+    public TKU_PSO.Dataset get(String name, int k) throws IOException {
+        Entry e = entries.get(name);
+        if (e == null) {
+            throw new IllegalArgumentException("unknown dataset: " + name);
+        }
+        CompletableFuture<TKU_PSO.Dataset> future;
+        boolean load = false;
+        synchronized (e) {
+            future = e.variants.get(k);
+            if (future == null) {
+                TKU_PSO.Dataset larger = smallestLoaded(e, k);
+                if (larger != null) {
+                    return larger;
+                }
+                String reason = e.rejected.get(k);
+                if (reason != null) {
+                    throw new BudgetExceededException(reason);
+                }
+                future = new CompletableFuture<>();
+                e.variants.put(k, future);
+                load = true;
+            }
+        }
+        if (load) { //this thread is responsible for loading the variant
+            try {
+                TKU_PSO.Dataset d = TKU_PSO.Dataset.load(e.path, k, e.outOfCore, e.ordering, e.budget);
+                admit(e, k, d);
+                future.complete(d);
+            } catch (IOException | RuntimeException ex) {
+                synchronized (e) {
+                    e.variants.remove(k, future);
+                    if (ex instanceof BudgetExceededException) {
+                        e.rejected.put(k, ex.getMessage());
+                    }
+                }
+                future.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while loading " + name, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    //the loaded variant with the smallest k >= the given k (marked as used for LRU), null if none, caller must hold the lock
+    private static TKU_PSO.Dataset smallestLoaded(Entry e, int k) {
+        int best = Integer.MAX_VALUE;
+        for (Map.Entry<Integer, CompletableFuture<TKU_PSO.Dataset>> v : e.variants.entrySet()) {
+            CompletableFuture<TKU_PSO.Dataset> f = v.getValue();
+            if (v.getKey() > k && v.getKey() < best && f.isDone() && !f.isCompletedExceptionally()) {
+                best = v.getKey();
+            }
+        }
+        return (best == Integer.MAX_VALUE) ? null : e.variants.get(best).join(); //get() moves it to the LRU end
+    }
+
+    /**
+     * Checks the memory budget for a newly loaded variant, evicting least recently used variants if needed.
+     * The dataset itself was already checked by Dataset.load with an upper bound of its size
+     */
+    private void admit(Entry e, int k, TKU_PSO.Dataset d) throws BudgetExceededException {
+        if (d.getEstimatedBytes() > e.budget) {
+            throw new BudgetExceededException("dataset " + e.path + " (k=" + k + ") needs ~"
+                    + d.getEstimatedBytes() + " bytes, budget is " + e.budget);
+        }
+        synchronized (e) {
+            long used = d.getEstimatedBytes() + usedBytes(e);
+            Iterator<Map.Entry<Integer, CompletableFuture<TKU_PSO.Dataset>>> it = e.variants.entrySet().iterator();
+            while (used > e.budget && it.hasNext()) {
+                CompletableFuture<TKU_PSO.Dataset> f = it.next().getValue();
+                if (f.isDone() && !f.isCompletedExceptionally()) { //variants still loading are not evicted
+                    used -= f.join().getEstimatedBytes();
+                    it.remove(); //running jobs keep their reference, the memory is freed when they finish
+                }
+            }
+        }
+    }
+
+    //sum of the estimated bytes of all loaded variants, caller must hold the entry lock
+    private static long usedBytes(Entry e) {
+        long used = 0;
+        for (CompletableFuture<TKU_PSO.Dataset> f : e.variants.values()) {
+            if (f.isDone() && !f.isCompletedExceptionally()) {
+                used += f.join().getEstimatedBytes();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Describes the registered datasets, one per line: name, path, budget, used bytes and loaded k-variants
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Entry> me : new TreeMap<>(entries).entrySet()) {
+            Entry e = me.getValue();
+            synchronized (e) {
+                sb.append(me.getKey()).append(' ').append(e.path);
+                sb.append(" budget=").append(e.budget);
+                sb.append(" outOfCore=").append(e.outOfCore != null);
+                sb.append(" ordering=").append(e.ordering);
+                sb.append(" used=").append(usedBytes(e));
+                sb.append(" k=").append(e.variants.keySet());
+                sb.append(" rejected=").append(e.rejected.keySet());
+            }
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
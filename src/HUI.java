@@ -0,0 +1,34 @@
+/**
+ * A discovered top-k high-utility itemset, with the original item names of the input file
+ */
+public final class HUI {
+    private final int[] items; //item names in the order they are written to the output
+    private final int utility;
+
+    public HUI(int[] items, int utility) {
+        this.items = items;
+        this.utility = utility;
+    }
+
+    public int[] getItems() {
+        return items.clone();
+    }
+
+    public int getUtility() {
+        return utility;
+    }
+
+    /**
+     * @return the itemset in the format of the output file, without line separator
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int item : items) {
+            sb.append(item);
+            sb.append(" ");
+        }
+        sb.append("#UTIL: ");
+        sb.append(utility);
+        return sb.toString();
+    }
+}
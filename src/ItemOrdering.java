@@ -0,0 +1,45 @@
+/**
+ * Order in which the HTWUIs are renamed to 1..#HTWUI during preprocessing.
+ * The order fixes the bit positions in particles, the order of the tidSet intersections in the pev-check and the
+ * order of the items in the transactions (the merge scan in the fitness calculation).
+ */
+public enum ItemOrdering {
+    UTILITY_DESC, //high utility first (promising items are early in the transactions and evaluated first)
+    TWU_DESC, //high TWU first
+    TWU_ASC, //low TWU first
+    SUPPORT_ASC, //rare items first (tidSets shrink fast during the pev-check)
+    SUPPORT_DESC, //frequent items first
+    AUTO; //the fastest of the above, measured on a sample of the database
+
+    /**
+     * Sort key of an item, items are renamed in ascending key order
+     *
+     * @param twu     TWU of the item
+     * @param utility utility of the item
+     * @param support number of transactions containing the item
+     */
+    long key(int twu, int utility, int support) {
+        switch (this) {
+            case TWU_DESC:
+                return -(long) twu;
+            case TWU_ASC:
+                return twu;
+            case SUPPORT_ASC:
+                return support;
+            case SUPPORT_DESC:
+                return -(long) support;
+            case UTILITY_DESC:
+            default:
+                return -(long) utility;
+        }
+    }
+
+    /**
+     * @param name case-insensitive name of an ordering
+     * @return the ordering
+     * @throws IllegalArgumentException if there is no ordering with the name
+     */
+    public static ItemOrdering parse(String name) {
+        return valueOf(name.toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,270 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Encoding vector of a particle: a set of item names.
+ * Dense itemsets wrap a BitSet sized to the item universe, which is fast for small universes.
+ * Sparse itemsets keep the items in a sorted int array, so copies, diffs, hashing and equality cost O(#items in the
+ * itemset) instead of O(#HTWUI/64), which matters when there are tens of thousands of HTWUIs.
+ * Both cache their hash code (itemsets are mostly hashed as keys of the explored set).
+ * Only itemsets with the same encoding are equal, a run must use one encoding for all its itemsets.
+ */
+public abstract class Itemset {
+    private int hash; //cached hash code
+    private boolean hashValid = false; //false if the itemset changed since the hash was computed
+
+    /**
+     * Creates an empty itemset
+     *
+     * @param universe the number of items
+     * @param sparse   true for the sorted int array encoding, false for a BitSet
+     */
+    public static Itemset create(int universe, boolean sparse) {
+        return sparse ? new Sparse(4) : new Dense(new BitSet(universe));
+    }
+
+    public abstract boolean get(int item);
+
+    public abstract void set(int item);
+
+    public abstract void clear(int item);
+
+    public abstract void flip(int item);
+
+    /**
+     * @return the smallest item >= from, -1 if there is none
+     */
+    public abstract int nextSetBit(int from);
+
+    /**
+     * @return the number of items
+     */
+    public abstract int cardinality();
+
+    /**
+     * @return the items in ascending order
+     */
+    public abstract int[] toArray();
+
+    /**
+     * @return a copy of this itemset
+     */
+    public abstract Itemset copy();
+
+    /**
+     * @return the items that are in exactly one of the two itemsets, in ascending order
+     */
+    public abstract int[] diff(Itemset other);
+
+    protected abstract int computeHash();
+
+    //must be called by all modifying methods
+    protected void changed() {
+        hashValid = false;
+    }
+
+    //a copy takes over the cached hash of the original
+    protected void copyHash(Itemset from) {
+        hash = from.hash;
+        hashValid = from.hashValid;
+    }
+
+    @Override
+    public int hashCode() {
+        if (!hashValid) {
+            hash = computeHash();
+            hashValid = true;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    // BitSet encoding, item i is bit i
+    private static final class Dense extends Itemset {
+        private final BitSet bits;
+
+        Dense(BitSet bits) {
+            this.bits = bits;
+        }
+
+        public boolean get(int item) {
+            return bits.get(item);
+        }
+
+        public void set(int item) {
+            bits.set(item);
+            changed();
+        }
+
+        public void clear(int item) {
+            bits.clear(item);
+            changed();
+        }
+
+        public void flip(int item) {
+            bits.flip(item);
+            changed();
+        }
+
+        public int nextSetBit(int from) {
+            return bits.nextSetBit(from);
+        }
+
+        public int cardinality() {
+            return bits.cardinality();
+        }
+
+        public int[] toArray() {
+            return bits.stream().toArray();
+        }
+
+        public Itemset copy() {
+            Dense d = new Dense((BitSet) bits.clone());
+            d.copyHash(this);
+            return d;
+        }
+
+        public int[] diff(Itemset other) {
+            BitSet temp = (BitSet) bits.clone();
+            temp.xor(((Dense) other).bits);
+            return temp.stream().toArray();
+        }
+
+        protected int computeHash() {
+            return bits.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Dense) && bits.equals(((Dense) o).bits);
+        }
+    }
+
+    // sorted int array encoding, items[0..size) are the items in ascending order
+    private static final class Sparse extends Itemset {
+        private int[] items;
+        private int size = 0;
+
+        Sparse(int capacity) {
+            this.items = new int[capacity];
+        }
+
+        private Sparse(int[] items, int size) {
+            this.items = items;
+            this.size = size;
+        }
+
+        public boolean get(int item) {
+            return Arrays.binarySearch(items, 0, size, item) >= 0;
+        }
+
+        public void set(int item) {
+            int pos = Arrays.binarySearch(items, 0, size, item);
+            if (pos < 0) {
+                insert(-pos - 1, item);
+            }
+        }
+
+        public void clear(int item) {
+            int pos = Arrays.binarySearch(items, 0, size, item);
+            if (pos >= 0) {
+                remove(pos);
+            }
+        }
+
+        public void flip(int item) {
+            int pos = Arrays.binarySearch(items, 0, size, item);
+            if (pos >= 0) {
+                remove(pos);
+            } else {
+                insert(-pos - 1, item);
+            }
+        }
+
+        private void insert(int pos, int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, Math.max(4, size * 2));
+            }
+            System.arraycopy(items, pos, items, pos + 1, size - pos);
+            items[pos] = item;
+            size++;
+            changed();
+        }
+
+        private void remove(int pos) {
+            System.arraycopy(items, pos + 1, items, pos, size - pos - 1);
+            size--;
+            changed();
+        }
+
+        public int nextSetBit(int from) {
+            int pos = Arrays.binarySearch(items, 0, size, from);
+            if (pos < 0) {
+                pos = -pos - 1;
+            }
+            return (pos < size) ? items[pos] : -1;
+        }
+
+        public int cardinality() {
+            return size;
+        }
+
+        public int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+
+        public Itemset copy() {
+            Sparse s = new Sparse(Arrays.copyOf(items, Math.max(size, 1)), size);
+            s.copyHash(this);
+            return s;
+        }
+
+        //merge of the two sorted arrays, keeping items that occur in only one of them
+        public int[] diff(Itemset other) {
+            Sparse o = (Sparse) other;
+            int[] result = new int[size + o.size];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < size && j < o.size) {
+                if (items[i] < o.items[j]) {
+                    result[n++] = items[i++];
+                } else if (items[i] > o.items[j]) {
+                    result[n++] = o.items[j++];
+                } else {
+                    i++;
+                    j++;
+                }
+            }
+            while (i < size) {
+                result[n++] = items[i++];
+            }
+            while (j < o.size) {
+                result[n++] = o.items[j++];
+            }
+            return Arrays.copyOf(result, n);
+        }
+
+        protected int computeHash() {
+            int h = 1;
+            for (int i = 0; i < size; i++) {
+                h = 31 * h + items[i];
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Sparse)) {
+                return false;
+            }
+            Sparse s = (Sparse) o;
+            return size == s.size && hashCode() == s.hashCode()
+                    && Arrays.equals(items, 0, size, s.items, 0, s.size);
+        }
+    }
+}
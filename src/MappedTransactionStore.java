@@ -0,0 +1,167 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Out-of-core transaction storage. The transactions are written to a temporary file and read through memory-mapped
+ * buffers, so the OS page cache decides which part of the database is resident instead of the heap size.
+ *
+ * Layout of the data file, one record per transaction (big-endian ints):
+ *   length, item_1, utility_1, ..., item_length, utility_length
+ * The file is mapped in segments of SEGMENT_SIZE bytes, records never cross a segment boundary (the rest of a
+ * segment is left empty when the next record does not fit). The index file holds the offset (long) of each record.
+ */
+public class MappedTransactionStore implements TransactionStore {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS; //1 GB per mapping
+    private static final int INDEX_BITS = SEGMENT_BITS - 3; //offsets per index mapping
+
+    private final ByteBuffer[] data; //mapped data segments
+    private final ByteBuffer[] index; //mapped index segments
+    private final int size; //number of transactions
+    private final long bytes; //size of the data file
+
+    private MappedTransactionStore(ByteBuffer[] data, ByteBuffer[] index, int size, long bytes) {
+        this.data = data;
+        this.index = index;
+        this.size = size;
+        this.bytes = bytes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes of the mapped data file
+     */
+    public long getMappedBytes() {
+        return bytes;
+    }
+
+    public int utility(int tid, int[] items) {
+        long offset = index[tid >>> INDEX_BITS].getLong((tid & ((1 << INDEX_BITS) - 1)) << 3);
+        ByteBuffer segment = data[(int) (offset >>> SEGMENT_BITS)];
+        int pos = (int) (offset & (SEGMENT_SIZE - 1));
+        int end = pos + 4 + (segment.getInt(pos) << 3); //end of the record
+        int fitness = 0;
+        int j = 0; //current index in itemset
+        for (pos += 4; pos < end && j < items.length; pos += 8) {
+            if (segment.getInt(pos) == items[j]) { //found item in transaction
+                fitness += segment.getInt(pos + 4);
+                j++;
+            }
+        }
+        return fitness;
+    }
+
+    public int items(int tid, int[] items) {
+        long offset = index[tid >>> INDEX_BITS].getLong((tid & ((1 << INDEX_BITS) - 1)) << 3);
+        ByteBuffer segment = data[(int) (offset >>> SEGMENT_BITS)];
+        int pos = (int) (offset & (SEGMENT_SIZE - 1));
+        int length = segment.getInt(pos);
+        for (int i = 0; i < length; i++) {
+            items[i] = segment.getInt(pos + 4 + (i << 3));
+        }
+        return length;
+    }
+
+    /**
+     * Writes the transactions to temporary files during the database scan, and maps them when finished
+     */
+    public static class Builder implements Closeable {
+        private final Path dataFile;
+        private final Path indexFile;
+        private final DataOutputStream dataOut;
+        private final DataOutputStream indexOut;
+        private long position = 0; //current position in the data file
+        private int size = 0; //number of written transactions
+
+        /**
+         * @param dir directory for the temporary files (null for the default temporary directory)
+         */
+        public Builder(Path dir) throws IOException {
+            dataFile = (dir == null) ? Files.createTempFile("tku-db", ".bin") : Files.createTempFile(dir, "tku-db", ".bin");
+            indexFile = (dir == null) ? Files.createTempFile("tku-idx", ".bin") : Files.createTempFile(dir, "tku-idx", ".bin");
+            dataOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dataFile), 1 << 16));
+            indexOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), 1 << 16));
+        }
+
+        /**
+         * Appends the next transaction
+         *
+         * @param items     item names, sorted
+         * @param utilities utility of each item
+         * @param length    number of items in the transaction
+         */
+        public void add(int[] items, int[] utilities, int length) throws IOException {
+            long recordSize = 4 + 8L * length;
+            if (recordSize > SEGMENT_SIZE) {
+                throw new IOException("transaction " + size + " is too large for out-of-core storage");
+            }
+            long free = SEGMENT_SIZE - (position & (SEGMENT_SIZE - 1));
+            if (recordSize > free) { //start the record at the next segment
+                for (long i = 0; i < free; i++) {
+                    dataOut.write(0);
+                }
+                position += free;
+            }
+            indexOut.writeLong(position);
+            dataOut.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                dataOut.writeInt(items[i]);
+                dataOut.writeInt(utilities[i]);
+            }
+            position += recordSize;
+            size++;
+        }
+
+        /**
+         * Maps the written files. The files are deleted, the mapping stays valid until the store is garbage collected
+         *
+         * @return the store
+         */
+        public MappedTransactionStore finish() throws IOException {
+            close();
+            MappedTransactionStore store = new MappedTransactionStore(
+                    map(dataFile, SEGMENT_SIZE), map(indexFile, SEGMENT_SIZE), size, position);
+            delete();
+            return store;
+        }
+
+        public void close() throws IOException {
+            dataOut.close();
+            indexOut.close();
+        }
+
+        /**
+         * Closes and deletes the temporary files (if the OS does not allow deleting mapped files, they are deleted
+         * when the JVM exits)
+         */
+        public void delete() {
+            for (Path p : new Path[]{dataFile, indexFile}) {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    p.toFile().deleteOnExit();
+                }
+            }
+        }
+
+        private static ByteBuffer[] map(Path file, long segmentSize) throws IOException {
+            List<ByteBuffer> segments = new ArrayList<>();
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long length = ch.size();
+                for (long start = 0; start < length; start += segmentSize) {
+                    segments.add(ch.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, length - start)));
+                }
+            }
+            return segments.toArray(new ByteBuffer[0]);
+        }
+    }
+}
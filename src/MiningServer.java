@@ -0,0 +1,310 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resident mining daemon. Keeps preprocessed datasets in a DatasetCatalog and runs mining jobs on a bounded pool,
+ * so a job only pays for the search and not for JVM startup and parsing.
+ * The server only listens on the loopback interface.
+ *
+ * API (parameters are passed in the query string):
+ *   POST   /datasets?name=&path=[&budgetMb=&outOfCore=dir&ordering=]
+ *                                                  register a dataset (outOfCore: memory-map the transactions,
+ *                                                  ordering: item renaming order, see ItemOrdering)
+ *   GET    /datasets                               list registered datasets
+ *   DELETE /datasets?name=                         drop a dataset
+ *   POST   /mine?dataset=[&k=&pop=&iterations=&time=&estimate=avg|max&adaptive=true&localSearch=true&stream=true]
+ *                                                  run a job, the response body is the top-k HUIs in SPMF format.
+ *                                                  With stream=true the body is sent while the job runs, one line
+ *                                                  per change to the top-k: "+ <hui>" when added, "- <hui>" when evicted.
+ *                                                  If the client falls too far behind (STREAM_BUFFER or 2k changes), the
+ *                                                  changes stop and the final top-k follows a "! lossy" line, one
+ *                                                  "= <hui>" line per HUI
+ */
+public class MiningServer {
+    private static final long DEFAULT_BUDGET_MB = 1024;
+    //max top-k changes waiting for a streaming client, at least 2k so the initial fill of the top-k fits
+    private static final int STREAM_BUFFER = 10_000;
+
+    private final HttpServer http;
+    private final DatasetCatalog catalog = new DatasetCatalog();
+    private final ThreadPoolExecutor workers; //runs the mining jobs
+    private final ExecutorService handlers; //serves the http exchanges
+
+    /**
+     * @param port    local port to listen on
+     * @param threads number of jobs that run concurrently
+     * @param queue   number of jobs that may wait for a free thread, further jobs are rejected. 0 to reject all jobs
+     *                while all threads are busy
+     */
+    public MiningServer(int port, int threads, int queue) throws IOException {
+        if (threads < 1 || queue < 0) {
+            throw new IllegalArgumentException("threads must be at least 1 and queue must not be negative");
+        }
+        //ArrayBlockingQueue needs a capacity of at least 1, a SynchronousQueue only hands jobs to idle threads
+        BlockingQueue<Runnable> waiting = (queue == 0) ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queue);
+        workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                waiting); //default AbortPolicy -> admission control
+        handlers = Executors.newCachedThreadPool();
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.setExecutor(handlers);
+        http.createContext("/datasets", this::handleDatasets);
+        http.createContext("/mine", this::handleMine);
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    public void stop() {
+        http.stop(0);
+        workers.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    public DatasetCatalog getCatalog() {
+        return catalog;
+    }
+
+    private void handleDatasets(HttpExchange ex) throws IOException {
+        try {
+            Map<String, String> q = query(ex);
+            switch (ex.getRequestMethod()) {
+                case "GET":
+                    respond(ex, 200, catalog.describe());
+                    break;
+                case "POST":
+                case "PUT":
+                    long budget = Long.parseLong(q.getOrDefault("budgetMb", String.valueOf(DEFAULT_BUDGET_MB)));
+                    String outOfCore = q.get("outOfCore");
+                    ItemOrdering ordering = ItemOrdering.parse(q.getOrDefault("ordering", "utility_desc"));
+                    catalog.register(required(q, "name"), required(q, "path"), budget * 1024 * 1024,
+                            (outOfCore == null) ? null : Paths.get(outOfCore), ordering);
+                    respond(ex, 200, "registered " + q.get("name") + System.lineSeparator());
+                    break;
+                case "DELETE":
+                    boolean removed = catalog.remove(required(q, "name"));
+                    respond(ex, removed ? 200 : 404, (removed ? "removed " : "unknown ") + q.get("name")
+                            + System.lineSeparator());
+                    break;
+                default:
+                    respond(ex, 405, "method not allowed" + System.lineSeparator());
+            }
+        } catch (IllegalArgumentException e) { //also NumberFormatException
+            respond(ex, 400, e.getMessage() + System.lineSeparator());
+        }
+    }
+
+    private void handleMine(HttpExchange ex) throws IOException {
+        if (!ex.getRequestMethod().equals("POST")) {
+            respond(ex, 405, "method not allowed" + System.lineSeparator());
+            return;
+        }
+        Future<TKU_PSO> job;
+        BlockingQueue<String> events; //top-k changes for a streamed response (null if not streamed)
+        AtomicBoolean lossy = new AtomicBoolean(); //set when a change did not fit in the events buffer
+        try {
+            Map<String, String> q = query(ex);
+            String name = required(q, "dataset");
+            int k = Integer.parseInt(q.getOrDefault("k", "1000"));
+            int popSize = Integer.parseInt(q.getOrDefault("pop", "20"));
+            int iterations = Integer.parseInt(q.getOrDefault("iterations", "10000"));
+            long time = Long.parseLong(q.getOrDefault("time", "0"));
+            if (k < 1 || popSize < 1) {
+                throw new IllegalArgumentException("k and pop must be at least 1");
+            }
+            if (iterations < 0 || time < 0) {
+                throw new IllegalArgumentException("iterations and time must not be negative");
+            }
+            boolean avgEstimate = q.getOrDefault("estimate", "avg").equalsIgnoreCase("avg");
+            boolean adaptive = Boolean.parseBoolean(q.get("adaptive"));
+            boolean localSearch = Boolean.parseBoolean(q.get("localSearch"));
+            events = Boolean.parseBoolean(q.get("stream")) ? new ArrayBlockingQueue<>(Math.max(STREAM_BUFFER, 2 * k)) : null;
+            BlockingQueue<String> out = events;
+            job = workers.submit(() -> {
+                TKU_PSO alg = new TKU_PSO(catalog.get(name, k), popSize, iterations, k, avgEstimate);
+                alg.setTimeLimit(time);
+                alg.setAdaptive(adaptive);
+                alg.setLocalSearch(localSearch);
+                if (out != null) { //hand the changes to the http thread, the search does not wait for the client
+                    alg.addListener(new TopKListener() {
+                        public void added(HUI hui) {
+                            offer("+ " + hui);
+                        }
+
+                        public void evicted(HUI hui) {
+                            offer("- " + hui);
+                        }
+
+                        //once a change is dropped the later ones are meaningless, the final top-k is sent instead
+                        private void offer(String event) {
+                            if (!lossy.get() && !out.offer(event)) {
+                                lossy.set(true);
+                            }
+                        }
+                    });
+                }
+                alg.run();
+                return alg;
+            });
+        } catch (IllegalArgumentException e) {
+            respond(ex, 400, e.getMessage() + System.lineSeparator());
+            return;
+        } catch (RejectedExecutionException e) {
+            respond(ex, 503, "too many jobs, try again later" + System.lineSeparator());
+            return;
+        }
+
+        if (events != null) {
+            stream(ex, job, events, lossy);
+            return;
+        }
+        try {
+            TKU_PSO alg = job.get();
+            ex.getResponseHeaders().add("X-Runtime-Ms", String.valueOf(alg.getRuntime()));
+            ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            ex.sendResponseHeaders(200, 0); //chunked, the results are encoded straight into the response
+            try (OutputStream os = ex.getResponseBody()) {
+                alg.writeResults(Channels.newChannel(os));
+            }
+        } catch (InterruptedException e) {
+            job.cancel(true);
+            Thread.currentThread().interrupt();
+            respond(ex, 503, "interrupted" + System.lineSeparator());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            int status = (cause instanceof IllegalArgumentException) ? 400
+                    : (cause instanceof DatasetCatalog.BudgetExceededException) ? 507 : 500;
+            respond(ex, status, cause + System.lineSeparator());
+        }
+    }
+
+    /**
+     * Sends the top-k changes of a running job as they happen. The lines are flushed whenever no more changes
+     * are waiting, so a client sees a new HUI shortly after it is discovered.
+     * If changes were dropped because the client was too slow, the final top-k is sent after the buffered changes
+     */
+    private static void stream(HttpExchange ex, Future<TKU_PSO> job, BlockingQueue<String> events,
+                               AtomicBoolean lossy) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        ex.sendResponseHeaders(200, 0);
+        try (Writer w = new OutputStreamWriter(ex.getResponseBody(), StandardCharsets.UTF_8)) {
+            while (!job.isDone() || !events.isEmpty()) {
+                String event = events.poll(20, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    w.write(event);
+                    w.write(System.lineSeparator());
+                }
+                if (events.isEmpty()) {
+                    w.flush();
+                }
+            }
+            try {
+                TKU_PSO alg = job.get();
+                if (lossy.get()) {
+                    w.write("! lossy" + System.lineSeparator());
+                    for (HUI hui : alg.getTopK()) {
+                        w.write("= " + hui + System.lineSeparator());
+                    }
+                }
+            } catch (ExecutionException e) { //headers are sent, report the failure in the body
+                w.write("! " + e.getCause() + System.lineSeparator());
+            }
+        } catch (InterruptedException e) {
+            job.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            job.cancel(true); //client went away
+            throw e;
+        }
+    }
+
+    private static String required(Map<String, String> q, String key) {
+        String value = q.get(key);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("missing parameter: " + key);
+        }
+        return value;
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> q = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return q;
+        }
+        for (String param : raw.split("&")) {
+            int eq = param.indexOf('=');
+            if (eq > 0) {
+                q.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return q;
+    }
+
+    private static void respond(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = 64;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--queue":
+                        queue = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        System.out.println("Unknown parameter: " + args[i]);
+                        printUsage();
+                        System.exit(1);
+                }
+            }
+            if (threads < 1 || queue < 0) {
+                throw new IllegalArgumentException("--threads must be at least 1 and --queue must not be negative");
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) { //also NumberFormatException
+            System.out.println("Error parsing parameters: " + e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+        MiningServer server = new MiningServer(port, threads, queue);
+        server.start();
+        System.out.println("Listening on 127.0.0.1:" + port + " with " + threads + " worker threads");
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java MiningServer [options]");
+        System.out.println("  --port <int>     : Local port to listen on (default: 8080)");
+        System.out.println("  --threads <int>  : Number of concurrent mining jobs (default: #cores)");
+        System.out.println("  --queue <int>    : Number of jobs that may wait before new ones are rejected (default: 64)");
+    }
+}
@@ -1,18 +1,28 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 
 //@author Simen Carstensen
 public class TKU_PSO {
     //DO NOT CHANGE!
-    List<Pair[]> database = new ArrayList<>(); //the database after pruning
+    TransactionStore database; //the database after pruning
     private Particle gBest; //the global fittest particle (or a top-K HUI selected with RWS)
     private Particle[] pBest; //list of personal fittest offspring of each particle
     private Particle[] population; //the population
-    private int maxTransactionLength = 0; //the number of items in the largest transaction
-    private ArrayList<Item> HTWUI = new ArrayList<>(); //list of all HTWUI
-    private HashSet<BitSet> explored; //set of current explored particles/itemsets
-    private HashMap<Integer, Integer> itemNamesRev = new HashMap<>(); //maps new item names to original
+    private int maxTransactionLength; //the number of items in the largest transaction
+    private ArrayList<Item> HTWUI; //list of all HTWUI
+    private HashSet<Itemset> explored; //set of current explored particles/itemsets
+    private boolean sparse; //true if itemsets use the sparse encoding (large item universe)
+    private HashMap<Integer, Integer> itemNamesRev; //maps new item names to original
+    private Dataset dataset; //the preprocessed database, loaded by init() unless given to the constructor
     private int std; //mean deviation between maxUtils and avgUtils
     private int lowEst = 0; //number of fitness underestimates
     private int highEst = 0; //number of fitness overestimates
@@ -23,6 +33,13 @@ public class TKU_PSO {
     private boolean runRWS = true; //true if RWS on gBest should be used at the current iteration
     private long utilSum = 0; // the combined utility of all current top-k HUIs (for RWS)
     private long twuSum = 0; //the combined twu of all HTWUIs (for RWS)
+    private int activePop; //number of particles updated per iteration (< pop_size only when adaptive)
+    private AdaptiveController controller; //adjusts activePop and std during the run (null if not adaptive)
+    private long evaluations = 0; //number of exact fitness calculations
+    private long skipped = 0; //number of fitness calculations skipped based on the estimate
+    private long discovered = 0; //number of top-k HUIs added to the solution set
+    private long wasted = 0; //number of particle updates that ended on an explored itemset
+    private HashSet<Itemset> intensified; //itemsets whose neighborhood has been searched by intensify()
 
 
     //file paths
@@ -34,12 +51,36 @@ public class TKU_PSO {
     private final int iterations; // the number of iterations before termination
     private final int k; //the desired number of top-k HUIs
     private final boolean avgEstimate; //true: use average estimates, false: use maximum estimates
+    private long timeLimit = 0; //max search time in ms before termination (0: only the iteration count applies)
+    private boolean adaptive = false; //true: adapt the active population and std to the search progress
+    private String outOfCoreDir = null; //directory for the memory-mapped database (null: keep the database on-heap)
+    private final List<TopKListener> listeners = new ArrayList<>(); //notified of changes to the top-k HUIs
+    private long snapshotInterval = 0; //ms between top-k snapshots to the listeners (0: no snapshots)
+    private boolean localSearch = false; //true: search the neighborhood of gBest and the top HUIs late in the run
+    private ItemOrdering ordering = ItemOrdering.UTILITY_DESC; //order of the item names, used when loading the input
 
     // Default values for algorithm parameters
     private static final int DEFAULT_POP_SIZE = 20;
     private static final int DEFAULT_ITERATIONS = 10000;
     private static final int DEFAULT_K = 1000;
     private static final boolean DEFAULT_AVG_ESTIMATE = true;
+    //itemsets use the sparse encoding from this number of HTWUIs, below it BitSets are faster
+    private static final int SPARSE_THRESHOLD = 4096;
+    //local search parameters
+    private static final double LS_PHASE = 0.75; //fraction of the run (iterations or time) before local search starts
+    private static final int LS_INTERVAL = 10; //iterations between local searches
+    private static final int LS_CENTERS = 3; //number of top-k HUIs searched besides gBest
+    private static final int LS_EXPAND = 5; //number of fittest 1-flip neighbors expanded to 2-flip neighbors
+    //automatic item ordering: each ordering is timed on the same itemsets over the first transactions of the database
+    private static final int SAMPLE_TRANSACTIONS = 5000; //number of transactions in the sample
+    private static final int SAMPLE_ITEMSETS = 1000; //number of itemsets evaluated per pass
+    private static final int SAMPLE_WARM_ROUNDS = 3; //warm-up ends after this many rounds without a faster pass
+    private static final int SAMPLE_ROUNDS = 12; //rounds after warm-up, compared between the orderings
+    private static final long SAMPLE_MAX_NANOS = 3_000_000_000L; //timing stops after this time in any case
+    private static final long SAMPLE_ROUND_NANOS = 10_000_000; //duration of a round, the pass is repeated
+    //another ordering replaces the default if this much faster, smaller differences do not repeat between JVM runs
+    private static final double SAMPLE_MARGIN = 0.20;
+    private static volatile long sampleChecksum; //last sum of the timed fitness values, keeps the timed work live
 
     //stats
     double maxMemory; // the maximum memory usage
@@ -66,14 +107,46 @@ public class TKU_PSO {
         }
     }
 
-    //used to store twu and util of each item during init() (instead of using two maps)
+    //on-heap database, each transaction is an array of pairs sorted by item name
+    private static class HeapTransactions implements TransactionStore {
+        final List<Pair[]> rows = new ArrayList<>();
+
+        public int size() {
+            return rows.size();
+        }
+
+        public int utility(int tid, int[] items) {
+            Pair[] transaction = rows.get(tid);
+            int fitness = 0;
+            int q = 0; //current index in transaction
+            for (int item : items) { //current item we are looking for
+                while (transaction[q].item != item) {
+                    q++;
+                }
+                fitness += transaction[q].utility; //found item in transaction
+            }
+            return fitness;
+        }
+
+        public int items(int tid, int[] items) {
+            Pair[] transaction = rows.get(tid);
+            for (int i = 0; i < transaction.length; i++) {
+                items[i] = transaction[i].item;
+            }
+            return transaction.length;
+        }
+    }
+
+    //used to store twu, util and support of each item during init() (instead of using three maps)
     private static class TwuAndUtil {
         final int twu;
         final int utility;
+        final int support;
 
-        public TwuAndUtil(int twu, int util) {
+        public TwuAndUtil(int twu, int util, int support) {
             this.twu = twu;
             this.utility = util;
+            this.support = support;
         }
     }
 
@@ -85,6 +158,7 @@ public class TKU_PSO {
         int totalUtil = 0; //utility of item
         int avgUtil; // average utility of item
         int maxUtil = 0; // maximum utility of item
+        int support; // number of transactions containing the item
 
         public Item(int item) {
             TIDS = new BitSet();
@@ -102,16 +176,16 @@ public class TKU_PSO {
 
     // this class represent a particle (a generated solution)
     private static class Particle implements Comparable<Particle> {
-        BitSet X; // itemset of particle (encoding vector)
+        Itemset X; // itemset of particle (encoding vector)
         int fitness; // fitness/utility of particle
         int estFitness; // estimated fitness of particle
 
-        public Particle(int size) {
-            this.X = new BitSet(size);
+        public Particle(Itemset itemset) {
+            this.X = itemset;
         }
 
-        public Particle(BitSet bitset, int fitness) {
-            this.X = (BitSet) bitset.clone();
+        public Particle(Itemset itemset, int fitness) {
+            this.X = itemset.copy();
             this.fitness = fitness;
         }
 
@@ -120,6 +194,22 @@ public class TKU_PSO {
         }
     }
 
+    //a neighbor itemset generated by the local search
+    private static class Neighbor {
+        final Itemset X; //the itemset
+        final BitSet tidSet; //TidSet of the itemset
+        final int support; //number of transactions in the tidSet
+        final int estFitness; //estimated utility per transaction (sum of item avg- or max utils)
+        int fitness; //exact fitness, 0 if skipped
+
+        Neighbor(Itemset X, BitSet tidSet, int estFitness) {
+            this.X = X;
+            this.tidSet = tidSet;
+            this.support = tidSet.cardinality();
+            this.estFitness = estFitness;
+        }
+    }
+
     //class for maintaining the top-k solutions
     private class Solutions {
         final int capacity; //max size of set, i.e. -> k
@@ -134,7 +224,11 @@ public class TKU_PSO {
         //adds a new top-k HUI to the solution set
         public void add(Particle p) {
             if (sol.size() == capacity) {
-                utilSum -= sol.pollLast().fitness; //set is full, remove the kth HUI and update utilSum
+                Particle evicted = sol.pollLast();
+                utilSum -= evicted.fitness; //set is full, remove the kth HUI and update utilSum
+                for (TopKListener l : listeners) {
+                    l.evicted(toHUI(evicted));
+                }
             }
             //disable RWS on gBest this iteration if particle is the new fittest solution
             if (!sol.isEmpty()) {
@@ -143,9 +237,13 @@ public class TKU_PSO {
             sol.add(p); // add the new HUI
             utilSum += p.fitness; //update utilSum
             newS = true; //notify new solution is discovered
+            discovered++;
             if (sol.size() == capacity) {
                 minSolutionFitness = sol.last().fitness; //update MSF
             }
+            for (TopKListener l : listeners) {
+                l.added(toHUI(p));
+            }
         }
 
         public TreeSet<Particle> getSol() {
@@ -158,6 +256,474 @@ public class TKU_PSO {
 
     }
 
+    /**
+     * Adapts the number of active particles and the estimate buffer (std) to the progress of the search.
+     * Every WINDOW iterations it looks at what happened in the window:
+     * - yield: new top-k HUIs per (possibly skipped) fitness evaluation. The run starts with minPop active particles,
+     *   the population grows while new HUIs are found at a steady or improving yield, so the early evaluations (when
+     *   almost any itemset enters the top-k) are spent on fewer particles.
+     * - explored-hit rate: the population stops growing while most updates end on explored itemsets. It never
+     *   shrinks, late windows without new HUIs are the normal end phase of a run and still improve the top-k.
+     * - underestimates: std is halved while the estimate (plus buffer) almost never underestimates, and doubled
+     *   (up to its initial value) only when underestimates become frequent. std stays at least 1, since underestimates
+     *   of skipped itemsets are never observed.
+     */
+    private class AdaptiveController {
+        static final int WINDOW = 25; //iterations between adjustments
+        final int minPop; //the active population at the start of the run
+        final int initialStd; //std is never loosened beyond its initial value
+        double lastYield = -1; //yield of the previous window
+        //counter values at the start of the current window
+        long evaluations0, skipped0, discovered0, wasted0, lowEst0, highEst0;
+
+        AdaptiveController() {
+            this.minPop = Math.min(pop_size, Math.max(2, pop_size / 4));
+            this.initialStd = std;
+        }
+
+        /**
+         * Called after each iteration of the main loop
+         *
+         * @param i the current iteration
+         */
+        void endIteration(int i) {
+            if (i == 0 || i % WINDOW != 0) {
+                return;
+            }
+            long evals = evaluations - evaluations0;
+            long skips = skipped - skipped0;
+            long found = discovered - discovered0;
+            double hitRate = (double) (wasted - wasted0) / (WINDOW * activePop);
+            double yield = (double) found / Math.max(1, evals + skips);
+
+            //population size
+            if (activePop < pop_size && found > 0 && yield >= lastYield && hitRate <= 0.6) {
+                activePop = Math.min(pop_size, activePop + 2);
+            }
+            lastYield = yield;
+
+            //estimate buffer (only used with average estimates)
+            if (avgEstimate) {
+                long low = lowEst - lowEst0;
+                long high = highEst - highEst0;
+                if (low > 0.05 * (low + high) && std < initialStd) {
+                    std = Math.min(initialStd, Math.max(1, std * 2)); //estimates too tight, loosen
+                } else if (high > 0 && (double) low / high < 0.01 && std > 1) {
+                    std = std / 2; //estimates mostly too high, tighten
+                }
+            }
+
+            evaluations0 = evaluations;
+            skipped0 = skipped;
+            discovered0 = discovered;
+            wasted0 = wasted;
+            lowEst0 = lowEst;
+            highEst0 = highEst;
+        }
+    }
+
+    /**
+     * The pruned and renamed database, together with the HTWUI metadata.
+     * A dataset is never modified after loading, so one instance can be shared by any number of concurrent runs
+     * with a k up to the one it was loaded for. The tidSets are trimmed during loading, because cloning an untrimmed
+     * BitSet trims (i.e. writes) the original.
+     */
+    public static class Dataset {
+        final String input; //path of the file the dataset was loaded from
+        final int k; //the k used for pruning
+        ItemOrdering ordering; //the order of the item names
+        TransactionStore database; //the database after pruning
+        final ArrayList<Item> HTWUI = new ArrayList<>(); //list of all HTWUI
+        final HashMap<Integer, Integer> itemNamesRev = new HashMap<>(); //maps new item names to original
+        int maxTransactionLength = 0; //the number of items in the largest transaction
+        long estimatedBytes = 0; //rough heap footprint of the database (if on-heap) and tidSets
+        int minUtil; //the utility of the kth fittest 1-itemset, items with lower TWU are pruned
+
+        private Dataset(String input, int k) {
+            this.input = input;
+            this.k = k;
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        public int getK() {
+            return k;
+        }
+
+        public ItemOrdering getOrdering() {
+            return ordering;
+        }
+
+        public int getHtwuiCount() {
+            return HTWUI.size();
+        }
+
+        public int getTransactionCount() {
+            return database.size();
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        /**
+         * @return true if the transactions are memory-mapped instead of stored on-heap
+         */
+        public boolean isOutOfCore() {
+            return database instanceof MappedTransactionStore;
+        }
+
+        /**
+         * Reads the input file, prunes unpromising items and initializes the database matrix on-heap.
+         *
+         * @param input path to the database file in SPMF format
+         * @param k     the largest number of top-k HUIs the dataset will be mined for
+         * @return the preprocessed dataset
+         */
+        public static Dataset load(String input, int k) throws IOException {
+            return load(input, k, null);
+        }
+
+        /**
+         * Reads the input file, prunes unpromising items and initializes the database.
+         *
+         * @param input      path to the database file in SPMF format
+         * @param k          the largest number of top-k HUIs the dataset will be mined for
+         * @param outOfCore  directory for a memory-mapped database, only the tidSets and item info stay on-heap.
+         *                   null to keep the whole database on-heap
+         * @return the preprocessed dataset
+         */
+        public static Dataset load(String input, int k, Path outOfCore) throws IOException {
+            return load(input, k, outOfCore, ItemOrdering.UTILITY_DESC);
+        }
+
+        /**
+         * Reads the input file, prunes unpromising items and initializes the database.
+         *
+         * @param input      path to the database file in SPMF format
+         * @param k          the largest number of top-k HUIs the dataset will be mined for
+         * @param outOfCore  directory for a memory-mapped database, only the tidSets and item info stay on-heap.
+         *                   null to keep the whole database on-heap
+         * @param ordering   the order in which items are renamed, AUTO picks the fastest order on a sample
+         * @return the preprocessed dataset
+         */
+        public static Dataset load(String input, int k, Path outOfCore, ItemOrdering ordering) throws IOException {
+            return load(input, k, outOfCore, ordering, Long.MAX_VALUE);
+        }
+
+        /**
+         * Reads the input file, prunes unpromising items and initializes the database.
+         * The size of the dataset is estimated after the first scan, so a dataset over the budget is rejected
+         * before the database is built
+         *
+         * @param input      path to the database file in SPMF format
+         * @param k          the largest number of top-k HUIs the dataset will be mined for
+         * @param outOfCore  directory for a memory-mapped database, only the tidSets and item info stay on-heap.
+         *                   null to keep the whole database on-heap
+         * @param ordering   the order in which items are renamed, AUTO picks the fastest order on a sample
+         * @param maxBytes   max estimated heap bytes of the dataset
+         * @return the preprocessed dataset
+         * @throws DatasetCatalog.BudgetExceededException if the estimated size is larger than maxBytes
+         */
+        public static Dataset load(String input, int k, Path outOfCore, ItemOrdering ordering, long maxBytes)
+                throws IOException {
+            if (ordering == ItemOrdering.AUTO) {
+                ordering = selectOrdering(input, k);
+                System.out.println("ordering: " + ordering);
+            }
+            Dataset d = read(input, k, outOfCore, ordering, Integer.MAX_VALUE, maxBytes);
+            System.out.println("minUtil: " + d.minUtil);
+            return d;
+        }
+
+        /**
+         * Times the fitness calculation (pev-check and exact utility) of a fixed set of itemsets over the first
+         * SAMPLE_TRANSACTIONS transactions with each ordering. The itemsets are drawn once with a fixed seed in original
+         * item names, so every ordering does the same work. The rounds of the orderings are interleaved. Once no ordering
+         * got faster for SAMPLE_WARM_ROUNDS rounds (i.e. the code is compiled), SAMPLE_ROUNDS more rounds are timed and
+         * each ordering is compared to the default UTILITY_DESC by the median of its per-round time ratios.
+         * The default is kept unless another ordering is faster by more than SAMPLE_MARGIN
+         *
+         * @return the ordering with the lowest median ratio, or the default
+         */
+        private static ItemOrdering selectOrdering(String input, int k) throws IOException {
+            ItemOrdering[] candidates = EnumSet.complementOf(EnumSet.of(ItemOrdering.AUTO)).toArray(new ItemOrdering[0]);
+            TKU_PSO[] algs = new TKU_PSO[candidates.length];
+            Particle[][] particles = new Particle[candidates.length][];
+            int[][] itemsets = null; //the sampled itemsets, original item names
+            for (int c = 0; c < candidates.length; c++) {
+                Dataset sample = read(input, k, null, candidates[c], SAMPLE_TRANSACTIONS, Long.MAX_VALUE);
+                if (sample.HTWUI.isEmpty()) {
+                    return candidates[0]; //nothing to time
+                }
+                if (itemsets == null) {
+                    itemsets = sampleItemsets(sample);
+                }
+                algs[c] = new TKU_PSO(sample, DEFAULT_POP_SIZE, 0, k, DEFAULT_AVG_ESTIMATE);
+                algs[c].init();
+                HashMap<Integer, Integer> names = new HashMap<>(); //maps original item names to this ordering
+                for (Map.Entry<Integer, Integer> e : sample.itemNamesRev.entrySet()) {
+                    names.put(e.getValue(), e.getKey());
+                }
+                particles[c] = new Particle[itemsets.length];
+                for (int i = 0; i < itemsets.length; i++) {
+                    Itemset X = algs[c].newItemset();
+                    for (int item : itemsets[i]) {
+                        X.set(names.get(item));
+                    }
+                    particles[c][i] = new Particle(X);
+                }
+            }
+
+            long checksum = 0; //sum of all fitness values, keeps the timed work from being optimized away
+            long[] times = new long[candidates.length]; //fastest pass over the itemsets of each ordering
+            Arrays.fill(times, Long.MAX_VALUE);
+            ArrayList<long[]> rounds = new ArrayList<>(); //pass time of each ordering in each round
+            int warm = -1; //first round after warm-up, -1 while warming up
+            int repeats = 1; //passes per round, adjusted so a round of the default takes SAMPLE_ROUND_NANOS
+            int stable = 0; //rounds without a faster pass
+            long deadline = System.nanoTime() + SAMPLE_MAX_NANOS;
+            for (int round = 0; (warm < 0 || round - warm < SAMPLE_ROUNDS) && System.nanoTime() < deadline; round++) {
+                boolean faster = false;
+                long[] passes = new long[candidates.length];
+                for (int i = 0; i < candidates.length; i++) {
+                    int c = (round % 2 == 0) ? i : candidates.length - 1 - i; //alternate, so drift hits all alike
+                    long start = System.nanoTime();
+                    checksum += evaluateAll(algs[c], particles[c], repeats);
+                    passes[c] = Math.max(1, (System.nanoTime() - start) / repeats);
+                    faster |= passes[c] < times[c] * 0.95; //still getting faster while the code is compiled
+                    times[c] = Math.min(times[c], passes[c]);
+                }
+                rounds.add(passes);
+                stable = faster ? 0 : stable + 1;
+                warm = (warm < 0 && stable >= SAMPLE_WARM_ROUNDS) ? round + 1 : warm;
+                repeats = (int) Math.max(1, SAMPLE_ROUND_NANOS / times[0]);
+            }
+            //without a settled warm-up within SAMPLE_MAX_NANOS, the later half of the rounds is compared
+            List<long[]> timed = rounds.subList((warm < 0 || warm == rounds.size()) ? rounds.size() / 2 : warm,
+                    rounds.size());
+            int best = 0; //candidates[0] is the default ordering
+            double bestRatio = 1;
+            for (int c = 0; c < candidates.length; c++) {
+                int o = c;
+                //the median ratio to the default in the same round ignores single lucky or unlucky rounds
+                double[] ratios = timed.stream().mapToDouble(passes -> (double) passes[o] / passes[0]).sorted().toArray();
+                double ratio = ratios[ratios.length / 2];
+                System.out.printf("sample %s: %d us (%.2f)%n", candidates[c], times[c] / 1000, ratio);
+                if (ratio < bestRatio) {
+                    best = c;
+                    bestRatio = ratio;
+                }
+            }
+            if (bestRatio > 1 - SAMPLE_MARGIN) {
+                best = 0; //not clearly faster than the default
+            }
+            sampleChecksum = checksum;
+            return candidates[best];
+        }
+
+        //pev-checks and evaluates the particles the given number of times, returns the sum of their fitness
+        private static long evaluateAll(TKU_PSO alg, Particle[] particles, int repeats) {
+            long sum = 0;
+            for (int r = 0; r < repeats; r++) {
+                for (Particle p : particles) {
+                    sum += alg.calcFitness(p, alg.pev_check(p), -1);
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * Draws SAMPLE_ITEMSETS itemsets that occur in the sample, with a fixed seed. Each itemset is 2 to 5 random
+         * HTWUIs of a random transaction (fewer if the transaction is shorter)
+         *
+         * @return the itemsets in original item names
+         */
+        private static int[][] sampleItemsets(Dataset sample) {
+            ArrayList<ArrayList<Integer>> transactions = new ArrayList<>(); //original names of the HTWUIs per tid
+            for (int tid = 0; tid < sample.database.size(); tid++) {
+                transactions.add(new ArrayList<>());
+            }
+            for (Item item : sample.HTWUI) {
+                for (int tid = item.TIDS.nextSetBit(0); tid != -1; tid = item.TIDS.nextSetBit(tid + 1)) {
+                    transactions.get(tid).add(sample.itemNamesRev.get(item.item));
+                }
+            }
+            Random random = new Random(42);
+            int[][] itemsets = new int[SAMPLE_ITEMSETS][];
+            for (int i = 0; i < SAMPLE_ITEMSETS; i++) {
+                ArrayList<Integer> transaction = transactions.get(random.nextInt(transactions.size()));
+                for (int tries = 0; tries < 50 && transaction.size() < 2; tries++) { //prefer multi-item transactions
+                    transaction = transactions.get(random.nextInt(transactions.size()));
+                }
+                ArrayList<Integer> items = new ArrayList<>(transaction);
+                Collections.shuffle(items, random);
+                itemsets[i] = items.stream().limit(2 + random.nextInt(4)).mapToInt(Integer::intValue).toArray();
+            }
+            return itemsets;
+        }
+
+        /**
+         * Reads (the first transactions of) the input file, prunes unpromising items and initializes the database.
+         *
+         * @param limit    max number of transactions to read
+         * @param maxBytes max estimated heap bytes of the dataset
+         */
+        private static Dataset read(String input, int k, Path outOfCore, ItemOrdering ordering, int limit,
+                                    long maxBytes) throws IOException {
+            Dataset d = new Dataset(input, k);
+            d.ordering = ordering;
+            String currentLine;
+            Map<Integer, TwuAndUtil> twuAndUtilMap = new HashMap<>();
+            int transactions = 0; //number of transactions (before pruning)
+            //1st DB-Scan: calculate TWU and utility of each item
+            try (BufferedReader reader = new BufferedReader(new FileReader(input))) {
+                while (transactions < limit && (currentLine = reader.readLine()) != null) {
+                    transactions++;
+                    String[] split = currentLine.split(":");
+                    String[] items = split[0].split(" ");
+                    String[] utilities = split[2].split(" ");
+                    int transactionUtility = Integer.parseInt(split[1]);
+                    for (int i = 0; i < items.length; i++) {
+                        int item = Integer.parseInt(items[i]);
+                        int util = Integer.parseInt(utilities[i]);
+                        //update item twu
+                        TwuAndUtil tau = twuAndUtilMap.get(item);
+                        int twu = (tau == null) ?
+                                transactionUtility : tau.twu + transactionUtility;
+                        //update item utility
+                        int currUtil = (tau == null) ?
+                                util : tau.utility + util;
+                        //update item support
+                        int support = (tau == null) ? 1 : tau.support + 1;
+                        twuAndUtilMap.put(item, new TwuAndUtil(twu, currUtil, support));
+                    }
+                }
+            }
+
+            //Set minUtil to utility of kth fittest 1-itemset
+            ArrayList<Pair> utils = new ArrayList<>(twuAndUtilMap.size());
+            for (Map.Entry<Integer, TwuAndUtil> e : twuAndUtilMap.entrySet()) {
+                utils.add(new Pair(e.getKey(), e.getValue().utility));
+            }
+            utils.sort(Comparator.comparingInt(Pair::getUtility).reversed()); //sort based on utility
+            int minUtil = (k <= utils.size()) ? utils.get(k - 1).utility : 0; //set min utility
+            d.minUtil = minUtil;
+
+            //rename items from 1 to #1-HTWUI in the given order, by default items with high utility has name closer to 1
+            //--> reduces memory usage (bec. bitset)
+            //--> faster fit. calc. (bec. promising items are early in trans. -> Many particles will contain these)
+            //--> better PEV-check (bec. promising items are evaluated first)
+            if (ordering != ItemOrdering.UTILITY_DESC) { //utils is already sorted by utility
+                utils.sort(Comparator.comparingLong((Pair p) -> {
+                    TwuAndUtil tau = twuAndUtilMap.get(p.item);
+                    return ordering.key(tau.twu, tau.utility, tau.support);
+                }));
+            }
+            HashMap<Integer, Integer> itemNames = new HashMap<>();
+            int name = 1;
+            long htwuiPairs = 0; //number of (item, utility) pairs left after pruning
+            for (Pair p : utils) {
+                TwuAndUtil tau = twuAndUtilMap.get(p.item);
+                if (tau.twu >= minUtil) { //check if the item is HTWUI
+                    htwuiPairs += tau.support;
+                    itemNames.put(p.item, name);
+                    d.itemNamesRev.put(name, p.item);
+                    //initialize some needed info for the item
+                    Item item = new Item(name);
+                    item.twu = tau.twu;
+                    item.totalUtil = tau.utility;
+                    d.HTWUI.add(item);
+                    name++;
+                }
+            }
+
+            //check the budget before the database is built (upper bound, transactions may become empty after pruning)
+            long estimate = estimateBytes(transactions, htwuiPairs, d.HTWUI.size(), outOfCore == null);
+            if (estimate > maxBytes) {
+                throw new DatasetCatalog.BudgetExceededException("dataset " + input + " (k=" + k + ") needs ~"
+                        + estimate + " bytes, budget is " + maxBytes);
+            }
+
+            //2nd DB-scan: prune and initialize db
+            long pairs = 0;
+            HeapTransactions heap = (outOfCore == null) ? new HeapTransactions() : null;
+            MappedTransactionStore.Builder mapped = (outOfCore == null) ? null : new MappedTransactionStore.Builder(outOfCore);
+            int[] transItems = new int[0]; //reused buffers for writing to the mapped database
+            int[] transUtils = new int[0];
+            try (BufferedReader reader = new BufferedReader(new FileReader(input))) {
+                int tid = 0;
+                int lines = 0;
+                while (lines++ < limit && (currentLine = reader.readLine()) != null) {
+                    String[] split = currentLine.split(":");
+                    String[] items = split[0].split(" ");
+                    String[] utilities = split[2].split(" ");
+                    List<Pair> transaction = new ArrayList<>();
+                    for (int i = 0; i < items.length; i++) {
+                        int item = Integer.parseInt(items[i]);
+                        int util = Integer.parseInt(utilities[i]);
+                        if (itemNames.containsKey(item)) { //the item is HTWUI
+                            item = itemNames.get(item); //get the new name
+                            transaction.add(new Pair(item, util)); //store in transaction with new name
+                            Item itemObj = d.HTWUI.get(item - 1);
+                            itemObj.TIDS.set(tid); //update the item's TidSet
+                            itemObj.maxUtil = Math.max(itemObj.maxUtil, util); //update the item's maximum utility
+                        }
+                    }
+                    if (!transaction.isEmpty()) {
+                        Collections.sort(transaction); //sort transaction according to item name (much faster fitness calc)
+                        //update longest transaction (for roulette wheel initialization)
+                        d.maxTransactionLength = Math.max(d.maxTransactionLength, transaction.size());
+                        if (mapped != null) { //write the transaction to the mapped file
+                            if (transItems.length < transaction.size()) {
+                                transItems = new int[d.maxTransactionLength];
+                                transUtils = new int[d.maxTransactionLength];
+                            }
+                            for (int i = 0; i < transaction.size(); i++) {
+                                transItems[i] = transaction.get(i).item;
+                                transUtils[i] = transaction.get(i).utility;
+                            }
+                            mapped.add(transItems, transUtils, transaction.size());
+                        } else {
+                            //convert transaction to array (better performance in fitness calc)
+                            Pair[] trans = new Pair[transaction.size()];
+                            transaction.toArray(trans);
+                            heap.rows.add(trans); //store revised transaction in db
+                            pairs += trans.length;
+                        }
+                        tid++; //increment transaction id
+                    }
+                }
+                d.database = (mapped != null) ? mapped.finish() : heap;
+            } catch (IOException | RuntimeException e) {
+                if (mapped != null) {
+                    mapped.close();
+                    mapped.delete();
+                }
+                throw e;
+            }
+
+            for (Item item : d.HTWUI) {
+                item.support = item.TIDS.cardinality();
+                item.avgUtil = 1 + (item.totalUtil / item.support); //find average utility
+                item.TIDS = (BitSet) item.TIDS.clone(); //trimmed copy, later clones in concurrent runs write nothing
+            }
+            d.estimatedBytes = estimateBytes(d.database.size(), pairs, d.HTWUI.size(), heap != null);
+            return d;
+        }
+
+        /**
+         * Rough heap footprint of a dataset: array headers and references, 24 bytes per Pair (0 if out-of-core),
+         * one tidSet word per 64 transactions for each item
+         */
+        private static long estimateBytes(long transactions, long pairs, int items, boolean onHeap) {
+            return (onHeap ? transactions * 24L + pairs * 28L : 0)
+                    + items * (64L + 8L * (transactions / 64 + 1));
+        }
+    }
+
     /**
      * Constructor that takes input and output file paths with default algorithm parameters
      * @param inputFile Path to the input database file in SPMF format
@@ -185,6 +751,81 @@ public class TKU_PSO {
         this.avgEstimate = avgEstimate;
     }
 
+    /**
+     * Constructor for mining an already loaded dataset. No output file is written, use getResults() instead
+     * @param dataset The preprocessed dataset, must be loaded with a k at least as large as the given k
+     * @param popSize Population size for PSO
+     * @param iterations Number of iterations before termination
+     * @param k Number of desired top-k HUIs
+     * @param avgEstimate Whether to use average estimates (true) or maximum estimates (false)
+     */
+    public TKU_PSO(Dataset dataset, int popSize, int iterations, int k, boolean avgEstimate) {
+        this(dataset.input, null, popSize, iterations, k, avgEstimate);
+        if (k > dataset.k) {
+            throw new IllegalArgumentException("dataset was pruned for k=" + dataset.k + ", cannot mine k=" + k);
+        }
+        this.dataset = dataset;
+    }
+
+    /**
+     * Limits the search time. The run terminates after the given time or the given iterations, whichever comes first
+     * @param millis Max time in ms spent in the main loop, 0 for no limit
+     */
+    public void setTimeLimit(long millis) {
+        this.timeLimit = millis;
+    }
+
+    /**
+     * Stores the pruned database in a memory-mapped file instead of on the heap, for databases larger than the heap.
+     * Only used when the database is loaded from the input file
+     * @param dir Directory for the temporary database file, null to keep the database on-heap
+     */
+    public void setOutOfCore(String dir) {
+        this.outOfCoreDir = dir;
+    }
+
+    /**
+     * Registers a listener that is notified whenever a top-k HUI is added or evicted during the run
+     * @param listener The listener
+     */
+    public void addListener(TopKListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Delivers the current top-k HUIs to the listeners periodically during the run, and once at the end
+     * @param millis Min time in ms between snapshots, 0 for no snapshots
+     */
+    public void setSnapshotInterval(long millis) {
+        this.snapshotInterval = millis;
+    }
+
+    /**
+     * Enables the local search phase. Late in the run, the 1-flip and 2-flip neighborhoods of gBest and the
+     * fittest top-k HUIs are searched systematically instead of relying on random flips only
+     * @param localSearch true to enable
+     */
+    public void setLocalSearch(boolean localSearch) {
+        this.localSearch = localSearch;
+    }
+
+    /**
+     * Selects the order in which items are renamed when the input file is loaded
+     * @param ordering The ordering, AUTO to pick the fastest ordering on a sample of the database
+     */
+    public void setItemOrdering(ItemOrdering ordering) {
+        this.ordering = ordering;
+    }
+
+    /**
+     * Enables adaptive tuning of the active population size and the estimate buffer during the run.
+     * pop_size is then the largest population used
+     * @param adaptive true to enable
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
     /**
      * Call this method to run the algorithm. File paths and algorithm parameters must be set in top of class
      *
@@ -203,23 +844,34 @@ public class TKU_PSO {
         sizeOneItemsets = new TreeSet<>();
         std = 0; // the deviation
         for (Item item : HTWUI) {
-            item.avgUtil = 1 + (item.totalUtil / item.TIDS.cardinality()); //find average utility
             std += item.maxUtil - item.avgUtil; //update deviation
             sizeOneItemsets.add(item); //store 1-itemset (for population initialization strategy)
             twuSum += item.twu; //update twu sum
         }
         explored = new HashSet<>(); //set for explored particles
-        explored.add(new BitSet(HTWUI.size())); //avoids edge-case for empty particle
+        explored.add(newItemset()); //avoids edge-case for empty particle
 
         if (HTWUI.size() != 0) {
             std = std / HTWUI.size(); // mean deviation
             generatePop(); //initialize the population
+            controller = adaptive ? new AdaptiveController() : null;
+            activePop = (controller != null) ? controller.minPop : pop_size; //grows while the yield holds
             fillSolutions(); // fill the solution-set with the remaining 1-itemsets
             List<Double> probRange = rouletteTopK(); //roulette probabilities for current top-k HUIs
-
-            for (int i = 0; i < iterations; i++) { //<-----------------MAIN LOOP
+            long deadline = (timeLimit > 0) ? System.currentTimeMillis() + timeLimit : Long.MAX_VALUE;
+            long nextSnapshot = System.currentTimeMillis() + snapshotInterval;
+            long lateTime = (timeLimit > 0) ? deadline - (long) (timeLimit * (1 - LS_PHASE)) : Long.MAX_VALUE;
+            intensified = new HashSet<>();
+
+            //an interrupted run (e.g. a cancelled server job) stops early and keeps the HUIs found so far
+            for (int i = 0; i < iterations && System.currentTimeMillis() < deadline
+                    && !Thread.currentThread().isInterrupted(); i++) { //<-----------------MAIN LOOP
                 runRWS = true;
                 update(); //update and evaluate each particle in population
+                if (localSearch && i % LS_INTERVAL == 0
+                        && (i >= iterations * LS_PHASE || System.currentTimeMillis() >= lateTime)) {
+                    intensify(deadline); //late phase, search the neighborhood of the best solutions
+                }
                 if (i > 1 && runRWS) { //RWS update of gBest
                     if (newS) { //new solutions are discovered, probability range must be updated
                         probRange = rouletteTopK();
@@ -228,13 +880,22 @@ public class TKU_PSO {
                     int pos = rouletteSelect(probRange);
                     selectGBest(pos);
                 }
-                //Tighten std if mostly overestimates are made (only relevant when avgEstimate is active)
-                if (i % 25 == 0 && highEst > 0 && i > 0 && std != 1) {
+                if (controller != null) {
+                    controller.endIteration(i);
+                } else if (i % 25 == 0 && highEst > 0 && i > 0 && std != 1) {
+                    //Tighten std if mostly overestimates are made (only relevant when avgEstimate is active)
                     std = ((double) lowEst / highEst < 0.01) ? std / 2 : std;
                 }
+                if (snapshotInterval > 0 && System.currentTimeMillis() >= nextSnapshot) {
+                    snapshot();
+                    nextSnapshot = System.currentTimeMillis() + snapshotInterval;
+                }
             }
         }
         endTimestamp = System.currentTimeMillis();
+        if (snapshotInterval > 0) {
+            snapshot();
+        }
         checkMemory();
         writeOut();
     }
@@ -250,7 +911,7 @@ public class TKU_PSO {
         population = new Particle[pop_size];
         pBest = new Particle[pop_size];
         for (int i = 0; i < pop_size; i++) {
-            Particle p = new Particle(HTWUI.size());
+            Particle p = new Particle(newItemset());
             if (!sizeOneItemsets.isEmpty()) { //initialize particle to next 1-itemset
                 p.X.set(sizeOneItemsets.pollLast().item);
             } else { //RWS initialization
@@ -283,10 +944,17 @@ public class TKU_PSO {
                     gBest = new Particle(p.X, p.fitness); //update gBest
                 }
             }
-            explored.add((BitSet) p.X.clone()); //set particle as explored
+            explored.add(p.X.copy()); //set particle as explored
         }
     }
 
+    /**
+     * @return an empty itemset with the encoding of this run
+     */
+    private Itemset newItemset() {
+        return Itemset.create(HTWUI.size() + 1, sparse); //item names start at 1
+    }
+
     /**
      * Fills the solution-set with 1-itemsets.
      * Repeats until there are k solutions or there are no more 1-itemsets
@@ -295,7 +963,7 @@ public class TKU_PSO {
     private void fillSolutions() {
         while (solutions.getSize() < k && !sizeOneItemsets.isEmpty()) {
             Item item = sizeOneItemsets.pollLast();
-            Particle p = new Particle(HTWUI.size());
+            Particle p = new Particle(newItemset());
             p.X.set(item.item);
             p.fitness = item.totalUtil;
             solutions.add(p);
@@ -352,22 +1020,17 @@ public class TKU_PSO {
         int buffer = avgEstimate ? (std * support) : 0;
         if (idx != -1) {
             if (est + buffer < minSolutionFitness && est < pBest[idx].fitness) {
+                skipped++;
                 return 0;// Skip fitness calculation
             }
         }
+        evaluations++;
 
         //calculate exact fitness
+        int[] items = p.X.toArray(); //the itemset, sorted (same order as the transactions)
         int fitness = 0;
         for (int i = tidSet.nextSetBit(0); i != -1; i = tidSet.nextSetBit(i + 1)) {
-            int q = 0; //current index in transaction
-            int item = p.X.nextSetBit(0); //current item we are looking for
-            while (item != -1) {
-                if (database.get(i)[q].item == item) { //found item in transaction
-                    fitness += database.get(i)[q].utility; //append utility to fitness
-                    item = p.X.nextSetBit(item + 1); //select next item in the itemset
-                }
-                q++;
-            }
+            fitness += database.utility(i, items);
         }
 
         //Update overestimates and underestimates
@@ -380,11 +1043,188 @@ public class TKU_PSO {
     }
 
 
+    /**
+     * Local search around gBest and the fittest top-k HUIs that have not been searched yet.
+     * All 1-flip neighbors of a center are generated and evaluated, then the 1-flip neighbors of its
+     * fittest neighbors (i.e. 2-flip neighbors of the center) are searched the same way
+     *
+     * @param deadline the time the run terminates, no new center is searched after it
+     */
+    private void intensify(long deadline) {
+        List<Particle> centers = new ArrayList<>(LS_CENTERS + 1);
+        centers.add(gBest);
+        for (Particle p : solutions.getSol()) {
+            if (centers.size() > LS_CENTERS) {
+                break;
+            }
+            centers.add(p);
+        }
+        for (Particle c : centers) {
+            if (Thread.currentThread().isInterrupted() || System.currentTimeMillis() >= deadline) {
+                return;
+            }
+            if (c.X.cardinality() == 0 || !intensified.add(c.X.copy())) {
+                continue;
+            }
+            int[] items = c.X.toArray();
+            List<Neighbor> evaluated = evaluate(neighbors(c.X, tidSetOf(items), estimateOf(items)));
+            for (int n = 0; n < Math.min(LS_EXPAND, evaluated.size()); n++) {
+                Neighbor nb = evaluated.get(n);
+                intensified.add(nb.X);
+                evaluate(neighbors(nb.X, nb.tidSet, nb.estFitness));
+            }
+        }
+    }
+
+    /**
+     * Generates the unexplored 1-flip neighbors of an itemset.
+     * The tidSet of an addition is the intersection of the parent tidSet and the TidSet of the item,
+     * the tidSet of a removal is recomputed from the remaining items
+     *
+     * @param X          the itemset
+     * @param tidSet     TidSet of the itemset
+     * @param estFitness estimated utility per transaction of the itemset
+     * @return the neighbors that occur in the database, sorted by estimated fitness (highest first)
+     */
+    private List<Neighbor> neighbors(Itemset X, BitSet tidSet, int estFitness) {
+        List<Neighbor> neighbors = new ArrayList<>();
+        int[] items = X.toArray();
+        for (int i = 0; i < items.length && items.length > 1; i++) { //removals
+            Itemset n = X.copy();
+            n.clear(items[i]);
+            if (!explored.contains(n)) {
+                Item item = HTWUI.get(items[i] - 1);
+                neighbors.add(new Neighbor(n, tidSetOf(n.toArray()),
+                        estFitness - (avgEstimate ? item.avgUtil : item.maxUtil)));
+            }
+        }
+        int support = tidSet.cardinality();
+        BitSet additions = cooccurring(tidSet);
+        for (int i = additions.nextSetBit(0); i != -1; i = additions.nextSetBit(i + 1)) {
+            Item item = HTWUI.get(i - 1);
+            if (X.get(i) || item.twu < minSolutionFitness) { //not an addition or not promising
+                continue;
+            }
+            int est = estFitness + (avgEstimate ? item.avgUtil : item.maxUtil);
+            long bound = (long) (est + (avgEstimate ? std : 0)) * Math.min(support, item.support);
+            if (bound < minSolutionFitness) { //evaluate() would skip it even at the largest possible support
+                continue;
+            }
+            Itemset n = X.copy();
+            n.set(i);
+            if (!explored.contains(n)) {
+                BitSet nTids = (BitSet) tidSet.clone();
+                nTids.and(item.TIDS);
+                neighbors.add(new Neighbor(n, nTids, est));
+            }
+        }
+        neighbors.sort(Comparator.comparingLong(
+                (Neighbor n) -> (long) n.estFitness * n.support).reversed());
+        return neighbors;
+    }
+
+    /**
+     * Finds the items that occur in at least one transaction of a tidSet. The items are read from the transactions
+     * when the tidSet is small compared to the item universe, otherwise the TidSet of every HTWUI is intersected
+     *
+     * @return the item names
+     */
+    private BitSet cooccurring(BitSet tidSet) {
+        BitSet items = new BitSet(HTWUI.size() + 1);
+        long rowCost = (long) tidSet.cardinality() * maxTransactionLength; //upper bound of the items to read
+        long scanCost = (long) HTWUI.size() * (tidSet.length() / 64 + 1); //words to intersect
+        if (rowCost < scanCost) {
+            int[] row = new int[maxTransactionLength];
+            for (int tid = tidSet.nextSetBit(0); tid != -1; tid = tidSet.nextSetBit(tid + 1)) {
+                int length = database.items(tid, row);
+                for (int i = 0; i < length; i++) {
+                    items.set(row[i]);
+                }
+            }
+        } else {
+            for (Item item : HTWUI) {
+                if (tidSet.intersects(item.TIDS)) {
+                    items.set(item.item);
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Evaluates a batch of neighbors and adds the new top-k HUIs to the solution set.
+     * Neighbors are evaluated in the given order, so the fittest ones raise minSolutionFitness early
+     * and more of the remaining ones can be skipped based on their estimate
+     *
+     * @param neighbors the neighbors, sorted by estimated fitness
+     * @return the neighbors whose fitness was calculated, sorted by fitness (highest first)
+     */
+    private List<Neighbor> evaluate(List<Neighbor> neighbors) {
+        List<Neighbor> evaluated = new ArrayList<>();
+        for (Neighbor n : neighbors) {
+            if (explored.contains(n.X)) { //generated twice in the same batch
+                continue;
+            }
+            explored.add(n.X);
+            int support = n.support;
+            if (n.X.cardinality() == 1) {
+                n.fitness = HTWUI.get(n.X.nextSetBit(0) - 1).totalUtil;
+            } else {
+                int est = n.estFitness * support;
+                int buffer = avgEstimate ? (std * support) : 0;
+                if (est + buffer < minSolutionFitness) {
+                    skipped++;
+                    continue; // Skip fitness calculation
+                }
+                evaluations++;
+                int[] items = n.X.toArray();
+                for (int i = n.tidSet.nextSetBit(0); i != -1; i = n.tidSet.nextSetBit(i + 1)) {
+                    n.fitness += database.utility(i, items);
+                }
+                if (est + buffer < n.fitness) {
+                    lowEst++;
+                } else {
+                    highEst++;
+                }
+            }
+            if (n.fitness > minSolutionFitness) { //new top-k HUI
+                solutions.add(new Particle(n.X, n.fitness));
+            }
+            if (n.fitness > gBest.fitness) {
+                gBest = new Particle(n.X, n.fitness);
+            }
+            evaluated.add(n);
+        }
+        evaluated.sort(Comparator.comparingInt((Neighbor n) -> n.fitness).reversed());
+        return evaluated;
+    }
+
+    //intersection of the TidSets of the items
+    private BitSet tidSetOf(int[] items) {
+        if (items.length == 1) {
+            return HTWUI.get(items[0] - 1).TIDS; //not modified by the callers
+        }
+        BitSet tidSet = (BitSet) HTWUI.get(items[0] - 1).TIDS.clone();
+        for (int i = 1; i < items.length; i++) {
+            tidSet.and(HTWUI.get(items[i] - 1).TIDS);
+        }
+        return tidSet;
+    }
+
+    //sum of the avg- or max utils of the items
+    private int estimateOf(int[] items) {
+        int est = 0;
+        for (int item : items) {
+            est += avgEstimate ? HTWUI.get(item - 1).avgUtil : HTWUI.get(item - 1).maxUtil;
+        }
+        return est;
+    }
+
     /**
      * Updates population and checks for new top-k HUIs
      */
     private void update() {
-        for (int i = 0; i < pop_size; i++) {
+        for (int i = 0; i < activePop; i++) {
             Particle p = population[i];
             List<Integer> diffList = bitDiff(pBest[i], p); //different items between pBest and current particle
             changeParticle(diffList, p); //change a random number of these items in p
@@ -402,7 +1242,7 @@ public class TKU_PSO {
             }
             //avoid PEV-check and fit. calc. if particle is already explored
             if (!explored.contains(p.X)) {
-                BitSet copy = (BitSet) p.X.clone(); //particle before pev
+                Itemset copy = p.X.copy(); //particle before pev
                 BitSet tidSet = pev_check(p);
                 //check if explored again because pev_check can change the particle
                 if (!explored.contains(p.X)) {
@@ -419,9 +1259,13 @@ public class TKU_PSO {
                     if (p.fitness > minSolutionFitness) {
                         solutions.add(new Particle(p.X, p.fitness));
                     }
-                    explored.add((BitSet) p.X.clone()); //set current particle as explored
+                    explored.add(p.X.copy()); //set current particle as explored
+                } else {
+                    wasted++;
                 }
                 explored.add(copy); //set particle before PEV-check as explored
+            } else {
+                wasted++;
             }
         }
     }
@@ -456,10 +1300,9 @@ public class TKU_PSO {
      * @return List containing the different bit positions(items)
      */
     private List<Integer> bitDiff(Particle best, Particle p) {
-        List<Integer> diffList = new ArrayList<>();
-        BitSet temp = (BitSet) best.X.clone();
-        temp.xor(p.X);
-        for (int i = temp.nextSetBit(0); i != -1; i = temp.nextSetBit(i + 1)) {
+        int[] diff = best.X.diff(p.X);
+        List<Integer> diffList = new ArrayList<>(diff.length);
+        for (int i : diff) {
             diffList.add(i);
         }
         return diffList;
@@ -539,110 +1382,139 @@ public class TKU_PSO {
 
 
     /**
-     * Reads the input file, prunes unpromising items and initializes the database matrix.
+     * Loads the dataset from the input file (unless one was given to the constructor) and binds it to this run.
+     * Afterwards the fitness of itemsets can be calculated, which is all selectOrdering needs of a run
      */
     private void init() throws IOException {
-        String currentLine;
-        Map<Integer, TwuAndUtil> twuAndUtilMap = new HashMap<>();
-        //1st DB-Scan: calculate TWU and utility of each item
-        try (BufferedReader reader = new BufferedReader(new FileReader(input))) {
-            while ((currentLine = reader.readLine()) != null) {
-                String[] split = currentLine.split(":");
-                String[] items = split[0].split(" ");
-                String[] utilities = split[2].split(" ");
-                int transactionUtility = Integer.parseInt(split[1]);
-                for (int i = 0; i < items.length; i++) {
-                    int item = Integer.parseInt(items[i]);
-                    int util = Integer.parseInt(utilities[i]);
-                    //update item twu
-                    TwuAndUtil tau = twuAndUtilMap.get(item);
-                    int twu = (tau == null) ?
-                            transactionUtility : tau.twu + transactionUtility;
-                    //update item utility
-                    int currUtil = (tau == null) ?
-                            util : tau.utility + util;
-                    twuAndUtilMap.put(item, new TwuAndUtil(twu, currUtil));
-                }
+        if (dataset == null) {
+            dataset = Dataset.load(input, k, (outOfCoreDir == null) ? null : Paths.get(outOfCoreDir), ordering);
+        }
+        database = dataset.database;
+        HTWUI = dataset.HTWUI;
+        itemNamesRev = dataset.itemNamesRev;
+        maxTransactionLength = dataset.maxTransactionLength;
+        sparse = HTWUI.size() >= SPARSE_THRESHOLD;
+    }
+
+
+    private void writeOut() throws IOException {
+        if (output == null) {
+            return; //results are fetched with getResults() or writeResults()
+        }
+        try (FileChannel ch = FileChannel.open(Paths.get(output),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeResults(ch);
+        }
+    }
+
+    /**
+     * Writes the discovered top-k HUIs to a channel, one per line in SPMF format with original item names.
+     * The lines are encoded directly into a reused buffer, without building the whole output in memory
+     *
+     * @param ch the channel, not closed by this method
+     */
+    public void writeResults(WritableByteChannel ch) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        byte[] separator = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+        byte[] util = "#UTIL: ".getBytes(StandardCharsets.US_ASCII);
+        for (Particle p : solutions.getSol()) {
+            for (int i = p.X.nextSetBit(0); i != -1; i = p.X.nextSetBit(i + 1)) {
+                reserve(buf, ch, 12);
+                putInt(buf, itemNamesRev.get(i));
+                buf.put((byte) ' ');
             }
+            reserve(buf, ch, util.length + 11 + separator.length);
+            buf.put(util);
+            putInt(buf, p.fitness);
+            buf.put(separator);
         }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
 
-        //Set minUtil to utility of kth fittest 1-itemset
-        ArrayList<Pair> utils = new ArrayList<>(twuAndUtilMap.size());
-        for (Map.Entry<Integer, TwuAndUtil> e : twuAndUtilMap.entrySet()) {
-            utils.add(new Pair(e.getKey(), e.getValue().utility));
-        }
-        utils.sort(Comparator.comparingInt(Pair::getUtility).reversed()); //sort based on utility
-        int minUtil = (k <= utils.size()) ? utils.get(k - 1).utility : 0; //set min utility
-        System.out.println("minUtil: " + minUtil);
-
-        //rename items from 1 to #1-HTWUI, items with high utility has name closer to 1
-        //--> reduces memory usage (bec. bitset)
-        //--> faster fit. calc. (bec. promising items are early in trans. -> Many particles will contain these)
-        //--> better PEV-check (bec. promising items are evaluated first)
-        HashMap<Integer, Integer> itemNames = new HashMap<>();
-        int name = 1;
-        for (Pair p : utils) {
-            TwuAndUtil tau = twuAndUtilMap.get(p.item);
-            if (tau.twu >= minUtil) { //check if the item is HTWUI
-                itemNames.put(p.item, name);
-                itemNamesRev.put(name, p.item);
-                //initialize some needed info for the item
-                Item item = new Item(name);
-                item.twu = tau.twu;
-                item.totalUtil = tau.utility;
-                HTWUI.add(item);
-                name++;
-            }
-        }
-
-        //2nd DB-scan: prune and initialize db
-        try (BufferedReader reader = new BufferedReader(new FileReader(input))) {
-            int tid = 0;
-            while ((currentLine = reader.readLine()) != null) {
-                String[] split = currentLine.split(":");
-                String[] items = split[0].split(" ");
-                String[] utilities = split[2].split(" ");
-                List<Pair> transaction = new ArrayList<>();
-                for (int i = 0; i < items.length; i++) {
-                    int item = Integer.parseInt(items[i]);
-                    int util = Integer.parseInt(utilities[i]);
-                    if (itemNames.containsKey(item)) { //the item is HTWUI
-                        item = itemNames.get(item); //get the new name
-                        transaction.add(new Pair(item, util)); //store in transaction with new name
-                        Item itemObj = HTWUI.get(item - 1);
-                        itemObj.TIDS.set(tid); //update the item's TidSet
-                        itemObj.maxUtil = Math.max(itemObj.maxUtil, util); //update the item's maximum utility
-                    }
-                }
-                if (!transaction.isEmpty()) {
-                    Collections.sort(transaction); //sort transaction according to item name (much faster fitness calc)
-                    //update longest transaction (for roulette wheel initialization)
-                    maxTransactionLength = Math.max(maxTransactionLength, transaction.size());
-                    //convert transaction to array (better performance in fitness calc)
-                    Pair[] trans = new Pair[transaction.size()];
-                    transaction.toArray(trans);
-                    database.add(trans); //store revised transaction in db
-                    tid++; //increment transaction id
-                }
+    //writes the buffer to the channel if it has less than n bytes left
+    private static void reserve(ByteBuffer buf, WritableByteChannel ch, int n) throws IOException {
+        if (buf.remaining() < n) {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                ch.write(buf);
             }
+            buf.clear();
         }
     }
 
+    //writes the decimal digits of value to the buffer (at most 11 bytes)
+    private static void putInt(ByteBuffer buf, int value) {
+        long v = value;
+        if (v < 0) {
+            buf.put((byte) '-');
+            v = -v;
+        }
+        int start = buf.position();
+        do {
+            buf.put((byte) ('0' + (v % 10)));
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = buf.position() - 1; i < j; i++, j--) { //digits were written in reverse
+            byte b = buf.get(i);
+            buf.put(i, buf.get(j));
+            buf.put(j, b);
+        }
+    }
 
-    private void writeOut() throws IOException {
-        StringBuilder sb = new StringBuilder();
+    /**
+     * Formats the discovered top-k HUIs, one per line in SPMF format with original item names
+     *
+     * @return the top-k HUIs of the latest execution
+     */
+    public String getResults() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeResults(Channels.newChannel(out));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); //not thrown by ByteArrayOutputStream
+        }
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return the current top-k HUIs, fittest first
+     */
+    public List<HUI> getTopK() {
+        List<HUI> topK = new ArrayList<>(solutions.getSize());
         for (Particle p : solutions.getSol()) {
-            for (int i = p.X.nextSetBit(0); i != -1; i = p.X.nextSetBit(i + 1)) {
-                sb.append(itemNamesRev.get(i));
-                sb.append(" ");
-            }
-            sb.append("#UTIL: ");
-            sb.append(p.fitness);
-            sb.append(System.lineSeparator());
+            topK.add(toHUI(p));
+        }
+        return topK;
+    }
+
+    //converts a solution to a HUI with the original item names
+    private HUI toHUI(Particle p) {
+        int[] items = p.X.toArray();
+        for (int i = 0; i < items.length; i++) {
+            items[i] = itemNamesRev.get(items[i]);
         }
-        BufferedWriter w = new BufferedWriter(new FileWriter(output));
-        w.write(sb.toString());
-        w.close();
+        return new HUI(items, p.fitness);
+    }
+
+    //delivers the current top-k HUIs to the listeners
+    private void snapshot() {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        List<HUI> topK = Collections.unmodifiableList(getTopK());
+        for (TopKListener l : listeners) {
+            l.snapshot(topK);
+        }
+    }
+
+    /**
+     * @return the time spent by the latest execution in ms
+     */
+    public long getRuntime() {
+        return endTimestamp - startTimestamp;
     }
 
     /**
@@ -656,6 +1528,7 @@ public class TKU_PSO {
         System.out.println(" Memory ~ " + maxMemory + " MB");
         System.out.println(" Discovered Utility   : " + utilSum);
         System.out.println(" Min Solution Fitness : " + minSolutionFitness);
+        System.out.println(" Fitness evaluations  : " + evaluations + " (" + skipped + " skipped)");
         System.out
                 .println("==================================");
     }
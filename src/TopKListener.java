@@ -0,0 +1,25 @@
+import java.util.List;
+
+/**
+ * Receives the top-k HUIs of a run while it is searching.
+ * Callbacks are made on the thread that runs the algorithm, between particle updates, so they should return quickly.
+ */
+public interface TopKListener {
+
+    /**
+     * Called when an itemset enters the current top-k HUIs
+     */
+    void added(HUI hui);
+
+    /**
+     * Called when an itemset is pushed out of the current top-k HUIs by a fitter one
+     */
+    default void evicted(HUI hui) {
+    }
+
+    /**
+     * Called with the current top-k HUIs (fittest first) at the snapshot interval of the run, and once at the end
+     */
+    default void snapshot(List<HUI> topK) {
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Storage of the pruned database. Transactions are identified by their tid (0 to size()-1) and hold
+ * (item, utility) pairs sorted by item name.
+ * Implementations are read-only after loading and must allow concurrent reads.
+ */
+public interface TransactionStore {
+
+    /**
+     * @return the number of transactions
+     */
+    int size();
+
+    /**
+     * Sums the utility of the given items in a transaction.
+     * All items must occur in the transaction (i.e. tid is in the tidSet of the itemset)
+     *
+     * @param tid   the transaction
+     * @param items the item names of the itemset in ascending order
+     * @return the utility of the itemset in the transaction
+     */
+    int utility(int tid, int[] items);
+
+    /**
+     * Copies the item names of a transaction
+     *
+     * @param tid   the transaction
+     * @param items receives the item names in ascending order, must hold the longest transaction
+     * @return the number of items in the transaction
+     */
+    int items(int tid, int[] items);
+}
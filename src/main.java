@@ -16,6 +16,11 @@ public class main {
         int iterations = 10000;
         int k = 1000;
         boolean avgEstimate = true;
+        long timeLimit = 0;
+        boolean adaptive = false;
+        String outOfCoreDir = null;
+        boolean localSearch = false;
+        ItemOrdering ordering = ItemOrdering.UTILITY_DESC;
 
         try {
             for (int i = 2; i < args.length; i++) {
@@ -36,19 +41,44 @@ public class main {
                     case "--estimate":
                         avgEstimate = args[++i].equalsIgnoreCase("avg");
                         break;
+                    case "-t":
+                    case "--time":
+                        timeLimit = Long.parseLong(args[++i]);
+                        break;
+                    case "-a":
+                    case "--adaptive":
+                        adaptive = true;
+                        break;
+                    case "-o":
+                    case "--out-of-core":
+                        outOfCoreDir = args[++i];
+                        break;
+                    case "-l":
+                    case "--local-search":
+                        localSearch = true;
+                        break;
+                    case "-r":
+                    case "--ordering":
+                        ordering = ItemOrdering.parse(args[++i]);
+                        break;
                     default:
                         System.out.println("Unknown parameter: " + args[i]);
                         printUsage();
                         System.exit(1);
                 }
             }
-        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) { //also NumberFormatException
             System.out.println("Error parsing parameters: " + e.getMessage());
             printUsage();
             System.exit(1);
         }
 
         TKU_PSO alg = new TKU_PSO(inputFile, outputFile, popSize, iterations, k, avgEstimate);
+        alg.setTimeLimit(timeLimit);
+        alg.setAdaptive(adaptive);
+        alg.setOutOfCore(outOfCoreDir);
+        alg.setLocalSearch(localSearch);
+        alg.setItemOrdering(ordering);
         alg.run();
         alg.printStats();
     }
@@ -63,5 +93,11 @@ public class main {
         System.out.println("  -i, --iterations <int>  : Number of iterations (default: 10000)");
         System.out.println("  -k, --top-k <int>      : Number of top-k HUIs to find (default: 1000)");
         System.out.println("  -e, --estimate <type>  : Estimate type: 'avg' or 'max' (default: avg)");
+        System.out.println("  -t, --time <ms>        : Max search time, stops before the iteration count if reached (default: 0, no limit)");
+        System.out.println("  -a, --adaptive         : Adapt population size (up to -p) and estimate buffer during the run");
+        System.out.println("  -o, --out-of-core <dir> : Keep the pruned database in a memory-mapped file in <dir> instead of on the heap");
+        System.out.println("  -l, --local-search     : Search the 1- and 2-flip neighborhood of the best HUIs in the last quarter of the run");
+        System.out.println("  -r, --ordering <name>  : Item renaming order: utility_desc, twu_desc, twu_asc, support_asc, support_desc");
+        System.out.println("                           or auto to pick the fastest on a sample (default: utility_desc)");
     }
 }